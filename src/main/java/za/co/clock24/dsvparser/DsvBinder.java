@@ -0,0 +1,369 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ *
+ * A record parser that binds the fields of a record to a class for you, so you do not have to write a
+ * {@link DsvRecordParser} by hand. Columns are matched to fields, setters or constructor parameters by
+ * their names in the header or by a {@link DsvColumn} annotation.
+ * <p>
+ * All the reflection happens when the binder is created and bound to a header. Binding combines the
+ * constructor, the setters and the conversions into a single method handle, and int, long and double
+ * columns are parsed straight into primitives, so the JIT can compile the whole record into much the
+ * same code as a hand-written record parser. Binding loads no classes of its own, so it is cheap to bind
+ * a binder to the header of every file it reads.
+ * <p>
+ * If the class has a no-argument constructor, the binder creates an instance and sets its fields and
+ * setters. Otherwise it calls the constructor with the most parameters whose names are known, either
+ * from {@link DsvColumn} annotations or because the class was compiled with <code>-parameters</code>.
+ * The canonical constructor of a record always has its parameter names, so records work as is.
+ * <p>
+ * Typical use, where the first line holds the column names:
+ * <pre>
+ * DsvBinder&lt;Person&gt; binder = DsvBinder.create(Person.class, MethodHandles.lookup());
+ * DsvParser&lt;Person&gt; parser = new DsvParser&lt;Person&gt;(reader, binder);
+ * binder.bindHeader(parser.readHeader());
+ * List&lt;Person&gt; people = parser.readAll();
+ * </pre>
+ *
+ * @author Johan Hoogenboezem
+ *
+ * @param <T>
+ */
+public class DsvBinder<T> implements DsvRecordParser<T> {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle HAS_FIELD;
+	private static final MethodHandle HAS_VALUE;
+	private static final MethodHandle APPLY;
+	private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(String[].class);
+
+	static {
+		try {
+			MethodType test = MethodType.methodType(boolean.class, String[].class, int.class);
+			HAS_FIELD = LOOKUP.findStatic(DsvBinder.class, "hasField", test);
+			HAS_VALUE = LOOKUP.findStatic(DsvBinder.class, "hasValue", test);
+			APPLY = LOOKUP.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Class<T> type;
+	private final List<Property> properties = new ArrayList<Property>();
+	private final MethodHandle instantiate;
+	private final MethodHandle constructor;
+	private MethodHandle record;
+
+	/**
+	 * Creates a binder for the given class. Pass <code>MethodHandles.lookup()</code> from your own code,
+	 * so the binder can reach the members your code can reach, including private ones.
+	 *
+	 * @param type
+	 * @param lookup
+	 * @return
+	 */
+	public static <T> DsvBinder<T> create(Class<T> type, MethodHandles.Lookup lookup) {
+		try {
+			return new DsvBinder<T>(type, lookup);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access " + type.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private DsvBinder(Class<T> type, MethodHandles.Lookup lookup) throws IllegalAccessException {
+		this.type = type;
+		MethodHandles.Lookup typeLookup = MethodHandles.privateLookupIn(type, lookup);
+		Constructor<?> noArguments = null;
+		for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+			if (candidate.getParameterCount() == 0)
+				noArguments = candidate;
+		}
+		if (noArguments != null) {
+			this.instantiate = typeLookup.unreflectConstructor(noArguments).asType(MethodType.methodType(Object.class));
+			this.constructor = null;
+			findProperties(lookup);
+		}
+		else {
+			Constructor<?> chosen = null;
+			for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+				if (allNamed(candidate) && (chosen == null || candidate.getParameterCount() > chosen.getParameterCount()))
+					chosen = candidate;
+			}
+			if (chosen == null)
+				throw new IllegalArgumentException(type.getName() + " has neither a no-argument constructor nor "
+						+ "a constructor with named parameters");
+			for (Parameter parameter : chosen.getParameters()) {
+				DsvColumn column = parameter.getAnnotation(DsvColumn.class);
+				properties.add(new Property(name(column, parameter.getName()), column, parameter.getType(), null));
+			}
+			this.instantiate = null;
+			this.constructor = typeLookup.unreflectConstructor(chosen);
+		}
+		bind(null);
+	}
+
+	/**
+	 * Binds the columns to the names in the header. Columns with a {@link DsvColumn} index keep that
+	 * index, and members that do not appear in the header are left alone. Returns the binder so you can
+	 * do method chaining.
+	 *
+	 * @param header
+	 * @return
+	 */
+	public DsvBinder<T> bindHeader(String[] header) {
+		bind(header);
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T parseRecord(String[] fields) {
+		try {
+			return (T) record.invokeExact(fields);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Cannot create " + type.getName(), t);
+		}
+	}
+
+	private void bind(String[] header) {
+		MethodHandle record;
+		if (constructor == null) {
+			// Starts out returning the new instance, and every bound property sets its value on it first.
+			record = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, String[].class);
+			for (Property property : properties) {
+				int index = columnIndex(property, header);
+				if (index < 0)
+					continue;
+				MethodHandle setter = property.setter.asType(MethodType.methodType(void.class, Object.class, property.valueType));
+				setter = MethodHandles.filterArguments(setter, 1, value(property.valueType, index));
+				setter = MethodHandles.guardWithTest(MethodHandles.dropArguments(present(property.valueType, index), 0, Object.class),
+						setter, MethodHandles.empty(setter.type()));
+				record = MethodHandles.foldArguments(record, setter);
+			}
+			record = MethodHandles.foldArguments(record, instantiate);
+		}
+		else {
+			MethodHandle[] arguments = new MethodHandle[properties.size()];
+			for (int i = 0; i < arguments.length; i++) {
+				Property property = properties.get(i);
+				int index = columnIndex(property, header);
+				MethodHandle missing = MethodHandles.dropArguments(MethodHandles.zero(property.valueType), 0, String[].class);
+				arguments[i] = index < 0 ? missing
+						: MethodHandles.guardWithTest(present(property.valueType, index), value(property.valueType, index), missing);
+			}
+			record = MethodHandles.filterArguments(constructor, 0, arguments);
+			record = MethodHandles.permuteArguments(record, MethodType.methodType(record.type().returnType(), String[].class),
+					new int[arguments.length]);
+		}
+		this.record = record.asType(MethodType.methodType(Object.class, String[].class));
+	}
+
+	/**
+	 * @return a handle that takes the fields and returns the converted value of the column.
+	 */
+	private static MethodHandle value(Class<?> valueType, int index) {
+		MethodHandle field = MethodHandles.insertArguments(ELEMENT, 1, index);
+		if (valueType == String.class)
+			return field;
+		MethodHandle converter;
+		try {
+			if (valueType == int.class)
+				converter = LOOKUP.findStatic(Integer.class, "parseInt", MethodType.methodType(int.class, String.class));
+			else if (valueType == long.class)
+				converter = LOOKUP.findStatic(Long.class, "parseLong", MethodType.methodType(long.class, String.class));
+			else if (valueType == double.class)
+				converter = LOOKUP.findStatic(Double.class, "parseDouble", MethodType.methodType(double.class, String.class));
+			else
+				converter = APPLY.bindTo(converter(valueType)).asType(MethodType.methodType(valueType, String.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		return MethodHandles.filterReturnValue(field, converter);
+	}
+
+	/**
+	 * @return a handle that takes the fields and tells whether the column has a value to set. Primitives
+	 * keep their default value when the field is empty.
+	 */
+	private static MethodHandle present(Class<?> valueType, int index) {
+		return MethodHandles.insertArguments(valueType.isPrimitive() ? HAS_VALUE : HAS_FIELD, 1, index);
+	}
+
+	private static boolean hasField(String[] fields, int index) {
+		return index < fields.length;
+	}
+
+	private static boolean hasValue(String[] fields, int index) {
+		return index < fields.length && !fields[index].isEmpty();
+	}
+
+	private int columnIndex(Property property, String[] header) {
+		if (property.index >= 0)
+			return property.index;
+		if (header == null)
+			return -1;
+		for (int i = 0; i < header.length; i++) {
+			if (property.name.equals(header[i]))
+				return i;
+		}
+		for (int i = 0; i < header.length; i++) {
+			if (header[i] != null && property.name.equalsIgnoreCase(header[i].trim()))
+				return i;
+		}
+		return -1;
+	}
+
+	private void findProperties(MethodHandles.Lookup lookup) throws IllegalAccessException {
+		Map<String, Property> byName = new LinkedHashMap<String, Property>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			MethodHandles.Lookup classLookup = MethodHandles.privateLookupIn(c, lookup);
+			for (Method method : c.getDeclaredMethods()) {
+				int modifiers = method.getModifiers();
+				if (Modifier.isStatic(modifiers) || method.isSynthetic() || method.isBridge()
+						|| method.getParameterCount() != 1 || method.getReturnType() != void.class)
+					continue;
+				DsvColumn column = method.getAnnotation(DsvColumn.class);
+				String name = method.getName();
+				boolean setter = name.length() > 3 && name.startsWith("set") && Character.isUpperCase(name.charAt(3));
+				if (column == null && !setter)
+					continue;
+				if (column != null && !column.value().isEmpty())
+					name = column.value();
+				else if (setter)
+					name = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+				if (!byName.containsKey(name))
+					byName.put(name, new Property(name, column, method.getParameterTypes()[0], classLookup.unreflect(method)));
+			}
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic())
+					continue;
+				DsvColumn column = field.getAnnotation(DsvColumn.class);
+				String name = name(column, field.getName());
+				if (!byName.containsKey(name))
+					byName.put(name, new Property(name, column, field.getType(), classLookup.unreflectSetter(field)));
+			}
+		}
+		properties.addAll(byName.values());
+	}
+
+	private static boolean allNamed(Constructor<?> constructor) {
+		for (Parameter parameter : constructor.getParameters()) {
+			DsvColumn column = parameter.getAnnotation(DsvColumn.class);
+			if (!parameter.isNamePresent() && (column == null || (column.value().isEmpty() && column.index() < 0)))
+				return false;
+		}
+		return true;
+	}
+
+	private static String name(DsvColumn column, String defaultName) {
+		return column == null || column.value().isEmpty() ? defaultName : column.value();
+	}
+
+	private static int index(DsvColumn column) {
+		return column == null ? -1 : column.index();
+	}
+
+	private static Function<String, Object> converter(final Class<?> valueType) {
+		if (valueType == String.class)
+			return new Function<String, Object>() {
+				public Object apply(String field) {
+					return field;
+				}
+			};
+		if (valueType == Integer.class || valueType == int.class)
+			return emptyAsNull(Integer::valueOf);
+		if (valueType == Long.class || valueType == long.class)
+			return emptyAsNull(Long::valueOf);
+		if (valueType == Double.class || valueType == double.class)
+			return emptyAsNull(Double::valueOf);
+		if (valueType == Float.class || valueType == float.class)
+			return emptyAsNull(Float::valueOf);
+		if (valueType == Short.class || valueType == short.class)
+			return emptyAsNull(Short::valueOf);
+		if (valueType == Byte.class || valueType == byte.class)
+			return emptyAsNull(Byte::valueOf);
+		if (valueType == Boolean.class || valueType == boolean.class)
+			return emptyAsNull(Boolean::valueOf);
+		if (valueType == Character.class || valueType == char.class)
+			return emptyAsNull(field -> field.charAt(0));
+		if (valueType == BigDecimal.class)
+			return emptyAsNull(BigDecimal::new);
+		if (valueType == BigInteger.class)
+			return emptyAsNull(BigInteger::new);
+		if (valueType.isEnum()) {
+			final Map<String, Object> constants = new LinkedHashMap<String, Object>();
+			for (Object constant : valueType.getEnumConstants())
+				constants.put(((Enum<?>) constant).name(), constant);
+			return emptyAsNull(field -> {
+				Object constant = constants.get(field);
+				if (constant == null)
+					throw new IllegalArgumentException("No constant " + field + " in " + valueType.getName());
+				return constant;
+			});
+		}
+		throw new IllegalArgumentException("Cannot bind a column to " + valueType.getName());
+	}
+
+	private static Function<String, Object> emptyAsNull(final Function<String, Object> converter) {
+		return new Function<String, Object>() {
+			public Object apply(String field) {
+				return field.isEmpty() ? null : converter.apply(field);
+			}
+		};
+	}
+
+	/**
+	 * A field, setter or constructor parameter that a column can be bound to.
+	 */
+	private static final class Property {
+		final String name;
+		final int index;
+		final Class<?> valueType;
+		final MethodHandle setter;
+
+		/**
+		 * The setter is null for constructor parameters. Members that are not annotated may be of any type,
+		 * as long as they are not bound to a column.
+		 */
+		Property(String name, DsvColumn column, Class<?> valueType, MethodHandle setter) {
+			this.name = name;
+			this.index = index(column);
+			this.valueType = valueType;
+			this.setter = setter;
+			if (column != null)
+				converter(valueType);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 
+ * Tells a {@link DsvBinder} which column goes into a field, setter or constructor parameter. Without
+ * this annotation the binder matches the header against the field, property or parameter name.
+ * 
+ * @author Johan Hoogenboezem
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+public @interface DsvColumn {
+
+	/**
+	 * The name of the column in the header.
+	 */
+	String value() default "";
+
+	/**
+	 * The zero-based position of the column. Takes precedence over the name, and is the only way to bind
+	 * a column when the input has no header.
+	 */
+	int index() default -1;
+
+}
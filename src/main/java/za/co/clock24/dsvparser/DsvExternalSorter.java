@@ -0,0 +1,365 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * Sorts the records from a parser when there are too many to hold in memory. The records are gathered
+ * into runs of a bounded size, each run is sorted and written to a temporary file, and the runs are
+ * merged back into a single sorted stream. If everything fits into one run, nothing is written to disk.
+ * When there are more runs than can be merged at once, groups of them are first merged into longer runs,
+ * as many times as it takes.
+ * <p>
+ * The sort is stable, so records that compare equal come out in the order they were read. Close the
+ * stream when you are done with it, so the temporary files are deleted:
+ * <pre>
+ * try (Stream&lt;String[]&gt; sorted = new DsvExternalSorter(DsvExternalSorter.byColumns(0, 2)).sort(parser)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Johan Hoogenboezem
+ *
+ */
+public class DsvExternalSorter {
+	private static final long DEFAULT_RUN_SIZE = 16L * 1024 * 1024;
+	private static final int DEFAULT_MAX_FAN_IN = 64;
+	private static final int BUFFER_SIZE = 65536;
+
+	private final Comparator<String[]> comparator;
+	private long runSize = DEFAULT_RUN_SIZE;
+	private int maxFanIn = DEFAULT_MAX_FAN_IN;
+	private Path tempDirectory;
+
+	public DsvExternalSorter(Comparator<String[]> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * A comparator that compares records on the given columns in turn, character by character. A record
+	 * that is too short to have a column sorts before one that has it.
+	 *
+	 * @param columns
+	 * @return
+	 */
+	public static Comparator<String[]> byColumns(final int... columns) {
+		return new Comparator<String[]>() {
+			public int compare(String[] left, String[] right) {
+				for (int column : columns) {
+					boolean hasLeft = column < left.length;
+					boolean hasRight = column < right.length;
+					if (hasLeft != hasRight)
+						return hasLeft ? 1 : -1;
+					if (hasLeft) {
+						int result = left[column].compareTo(right[column]);
+						if (result != 0)
+							return result;
+					}
+				}
+				return 0;
+			}
+		};
+	}
+
+	/**
+	 * Call this method to change how many characters of field data are held in memory before a run is
+	 * written to disk. Returns the sorter instance so you can do method chaining.
+	 *
+	 * @param chars
+	 * @return
+	 */
+	public DsvExternalSorter useRunSize(long chars) {
+		if (chars < 1)
+			throw new IllegalArgumentException("Run size must be positive: " + chars);
+		this.runSize = chars;
+		return this;
+	}
+
+	/**
+	 * Call this method to change how many runs are merged at once. Every run that is being merged holds an
+	 * open file and a read buffer of 64KB. Returns the sorter instance so you can do method chaining.
+	 *
+	 * @param runs
+	 * @return
+	 */
+	public DsvExternalSorter useMaxFanIn(int runs) {
+		if (runs < 2)
+			throw new IllegalArgumentException("At least two runs must be merged at once: " + runs);
+		this.maxFanIn = runs;
+		return this;
+	}
+
+	/**
+	 * Call this method to write the runs somewhere other than the default temporary directory. Returns the
+	 * sorter instance so you can do method chaining.
+	 *
+	 * @param tempDirectory
+	 * @return
+	 */
+	public DsvExternalSorter useTempDirectory(Path tempDirectory) {
+		this.tempDirectory = tempDirectory;
+		return this;
+	}
+
+	/**
+	 * Parses everything the parser has to offer and returns the records in sorted order. The sorter uses
+	 * the record callback of the parser to collect the records, so any callback set before is replaced.
+	 *
+	 * @param parser
+	 * @return
+	 * @throws IOException
+	 */
+	public Stream<String[]> sort(DsvParser<String[]> parser) throws IOException {
+		final List<Path> runs = new ArrayList<Path>();
+		final List<String[]> run = new ArrayList<String[]>();
+		try {
+			parser.setRecordCallback(new DsvRecordCallback<String[]>() {
+				private long chars;
+
+				public boolean processingRecord(String[] t) {
+					run.add(t);
+					chars += t.length;
+					for (String field : t)
+						chars += field.length();
+					if (chars >= runSize) {
+						try {
+							runs.add(spill(run));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						chars = 0;
+					}
+					// The parser does not need to keep anything, the runs hold it all.
+					return false;
+				}
+			});
+			try {
+				parser.readAll();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			if (runs.isEmpty()) {
+				run.sort(comparator);
+				return run.stream();
+			}
+			if (!run.isEmpty())
+				runs.add(spill(run));
+			while (runs.size() > maxFanIn)
+				mergePass(runs);
+			return merge(runs);
+		} catch (IOException | RuntimeException | Error e) {
+			delete(runs);
+			throw e;
+		}
+	}
+
+	/**
+	 * Groups consecutive records of a sorted stream that compare equal on the given comparator, and
+	 * reduces each group with the collector. Only one group is held in memory at a time. To remove
+	 * duplicates but keep the first record of each, for example:
+	 * <pre>
+	 * DsvExternalSorter.groupBy(sorted, key, Collectors.reducing(null, (first, next) -&gt; first == null ? next : first))
+	 * </pre>
+	 *
+	 * @param sorted
+	 * @param key
+	 * @param collector
+	 * @return
+	 */
+	public static <A> Stream<A> groupBy(Stream<String[]> sorted, Comparator<String[]> key,
+			Collector<String[], ?, A> collector) {
+		return group(sorted, key, collector);
+	}
+
+	private static <R, A> Stream<A> group(final Stream<String[]> sorted, final Comparator<String[]> key,
+			final Collector<String[], R, A> collector) {
+		final Iterator<String[]> records = sorted.iterator();
+		Iterator<A> groups = new Iterator<A>() {
+			private String[] pending;
+
+			public boolean hasNext() {
+				return pending != null || records.hasNext();
+			}
+
+			public A next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				String[] first = pending != null ? pending : records.next();
+				pending = null;
+				R container = collector.supplier().get();
+				collector.accumulator().accept(container, first);
+				while (records.hasNext()) {
+					String[] record = records.next();
+					if (key.compare(first, record) != 0) {
+						pending = record;
+						break;
+					}
+					collector.accumulator().accept(container, record);
+				}
+				return collector.finisher().apply(container);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(groups, Spliterator.ORDERED), false)
+				.onClose(sorted::close);
+	}
+
+	private Path spill(List<String[]> run) throws IOException {
+		run.sort(comparator);
+		Path file = write(run.iterator());
+		run.clear();
+		return file;
+	}
+
+	/**
+	 * Merges consecutive groups of runs into longer runs, which replace them in the list. Keeping the
+	 * groups consecutive keeps the sort stable.
+	 */
+	private void mergePass(List<Path> runs) throws IOException {
+		List<Path> merged = new ArrayList<Path>();
+		try {
+			for (int from = 0; from < runs.size(); from += maxFanIn) {
+				List<Path> group = new ArrayList<Path>(runs.subList(from, Math.min(runs.size(), from + maxFanIn)));
+				if (group.size() == 1) {
+					merged.add(group.get(0));
+					continue;
+				}
+				try (Stream<String[]> records = merge(group)) {
+					merged.add(write(records.iterator()));
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			delete(merged);
+			throw e;
+		}
+		runs.clear();
+		runs.addAll(merged);
+	}
+
+	private Path write(Iterator<String[]> records) throws IOException {
+		Path file = tempDirectory == null ? Files.createTempFile("dsv", ".run")
+				: Files.createTempFile(tempDirectory, "dsv", ".run");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+			while (records.hasNext())
+				DsvRecordCodec.write(out, records.next());
+			DsvRecordCodec.writeEnd(out);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return file;
+	}
+
+	private Stream<String[]> merge(final List<Path> runs) throws IOException {
+		final List<DataInputStream> inputs = new ArrayList<DataInputStream>();
+		final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(runs.size(), new Comparator<Cursor>() {
+			public int compare(Cursor left, Cursor right) {
+				int result = comparator.compare(left.record, right.record);
+				// Ties go to the earlier run, which keeps the sort stable.
+				return result != 0 ? result : Integer.compare(left.run, right.run);
+			}
+		});
+		final Runnable close = new Runnable() {
+			public void run() {
+				for (DataInputStream input : inputs) {
+					try {
+						input.close();
+					} catch (IOException e) {
+						// Nothing more we can do, the file is deleted next.
+					}
+				}
+				delete(runs);
+			}
+		};
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), BUFFER_SIZE));
+				inputs.add(input);
+				String[] record = DsvRecordCodec.read(input);
+				if (record != null)
+					queue.add(new Cursor(i, input, record));
+			}
+		} catch (IOException | RuntimeException e) {
+			close.run();
+			throw e;
+		}
+		Iterator<String[]> merged = new Iterator<String[]>() {
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
+
+			public String[] next() {
+				Cursor cursor = queue.poll();
+				if (cursor == null)
+					throw new NoSuchElementException();
+				String[] record = cursor.record;
+				try {
+					cursor.record = DsvRecordCodec.read(cursor.input);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (cursor.record != null)
+					queue.add(cursor);
+				return record;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(close);
+	}
+
+	private static void delete(List<Path> files) {
+		for (Path file : files) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// Leave it for the operating system to clean up.
+			}
+		}
+	}
+
+	private static final class Cursor {
+		final int run;
+		final DataInputStream input;
+		String[] record;
+
+		Cursor(int run, DataInputStream input, String[] record) {
+			this.run = run;
+			this.input = input;
+			this.record = record;
+		}
+	}
+}
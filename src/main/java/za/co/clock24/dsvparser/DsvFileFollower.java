@@ -0,0 +1,299 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Follows a file that is being appended to, like <code>tail -f</code>, and hands every new record to a
+ * {@link DsvRecordCallback}. Each {@link #poll()} parses from where the previous one stopped up to the
+ * last complete record, so a record that is still being written is held back until its line terminator
+ * arrives. That also means a last record without a line terminator is only passed on once something
+ * follows it.
+ * <p>
+ * The follower only has to remember a byte offset, because it always stops between records. If the file
+ * shrinks below that offset, or is replaced by a different file with the same name (as happens with log
+ * rotation), it starts again from the beginning of the file. It also keeps the last few bytes before the
+ * offset and starts again if they changed, which catches a file that was truncated in place and then grew
+ * past the old offset before it was polled, as happens with copy-truncate rotation.
+ * <p>
+ * The charset must encode the delimiter, quote and line terminators the same wherever they appear, as
+ * UTF-8 and the single-byte charsets do.
+ *
+ * @author Johan Hoogenboezem
+ *
+ * @param <T>
+ */
+public class DsvFileFollower<T> {
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	private static final int TAIL_SIZE = 64;
+
+	private final Path file;
+	private final DsvRecordParser<T> recordParser;
+	private final DsvRecordCallback<T> recordCallback;
+	private DsvFieldCallback fieldCallback;
+	private char delimeter = ',';
+	private char quote = '"';
+	private Charset charset = StandardCharsets.UTF_8;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private long offset;
+	private Object fileKey;
+	private byte[] tail;
+
+	/**
+	 * The callback is invoked for every new record. Its return value is ignored, because the follower
+	 * does not keep the records.
+	 *
+	 * @param file
+	 * @param recordParser
+	 * @param recordCallback
+	 */
+	public DsvFileFollower(Path file, DsvRecordParser<T> recordParser, DsvRecordCallback<T> recordCallback) {
+		this.file = file;
+		this.recordParser = recordParser;
+		this.recordCallback = recordCallback;
+	}
+
+	/**
+	 * Set a callback object that will be invoked after every field is processed.
+	 *
+	 * @param fieldCallback
+	 */
+	public void setFieldCallback(DsvFieldCallback fieldCallback) {
+		this.fieldCallback = fieldCallback;
+	}
+
+	/**
+	 * Call this method to specify a delimiter different from a comma. Returns
+	 * the follower instance so you can do method chaining.
+	 *
+	 * @param delimeter
+	 * @return
+	 */
+	public DsvFileFollower<T> useDelimiter(char delimeter) {
+		this.delimeter = delimeter;
+		return this;
+	}
+
+	/**
+	 * Call this method to specify a different character for quoting strings with.
+	 * Returns the follower instance so you can do method chaining.
+	 *
+	 * @param quote
+	 * @return
+	 */
+	public DsvFileFollower<T> useQuoteCharacter(char quote) {
+		this.quote = quote;
+		return this;
+	}
+
+	/**
+	 * Call this method if the file is not UTF-8. Returns the follower instance so you can do method chaining.
+	 *
+	 * @param charset
+	 * @return
+	 */
+	public DsvFileFollower<T> useCharset(Charset charset) {
+		this.charset = charset;
+		return this;
+	}
+
+	/**
+	 * Call this method to read the file in blocks of a different size. A block grows as needed when a
+	 * single record does not fit. Returns the follower instance so you can do method chaining.
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	public DsvFileFollower<T> useBufferSize(int bytes) {
+		if (bytes < 1)
+			throw new IllegalArgumentException("Buffer size must be positive: " + bytes);
+		this.bufferSize = bytes;
+		return this;
+	}
+
+	/**
+	 * Call this method to resume from an offset returned by {@link #getOffset()} earlier, for example
+	 * after a restart. The offset must be at the start of a record; if it does not follow a line terminator,
+	 * the follower starts from the beginning of the file. Returns the follower instance so you can do
+	 * method chaining.
+	 *
+	 * @param offset
+	 * @return
+	 */
+	public DsvFileFollower<T> startAt(long offset) {
+		if (offset < 0)
+			throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+		this.offset = offset;
+		this.tail = null;
+		return this;
+	}
+
+	/**
+	 * @return the byte offset just past the last record passed on.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Parses whatever complete records were added to the file since the previous call. If the file does
+	 * not exist, for instance in the middle of a rotation, nothing happens.
+	 *
+	 * @return the number of new records.
+	 * @throws IOException
+	 */
+	public long poll() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+		Object key = attributes.fileKey();
+		if ((fileKey != null && key != null && !fileKey.equals(key)) || attributes.size() < offset)
+			offset = 0;
+		fileKey = key;
+		long records = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (offset > 0 && !resumable(channel))
+				offset = 0;
+			long start = offset;
+			CharsetDecoder decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+			CharsetEncoder encoder = charset.newEncoder();
+			int blockSize = bufferSize;
+			long size = channel.size();
+			while (offset < size) {
+				int length = (int) Math.min(blockSize, size - offset);
+				ByteBuffer bytes = ByteBuffer.allocate(length);
+				while (bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) > 0);
+				bytes.flip();
+				CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.limit() * (double) decoder.maxCharsPerByte()));
+				CoderResult result = decoder.reset().decode(bytes, chars, false);
+				if (result.isError())
+					result.throwException();
+				DsvRecordScanner scanner = new DsvRecordScanner(delimeter, quote);
+				scanner.scan(chars.array(), 0, chars.position(), Long.MAX_VALUE);
+				int end = scanner.getRecordEnd();
+				if (end < 0) {
+					if (length == size - offset || blockSize > Integer.MAX_VALUE / 2)
+						break;
+					blockSize *= 2;
+					continue;
+				}
+				parse(chars.array(), end);
+				records += scanner.getRecords();
+				// Only the bytes behind the last complete record are held back for the next round.
+				int heldBack = bytes.remaining()
+						+ encoder.reset().encode(CharBuffer.wrap(chars.array(), end, chars.position() - end)).remaining();
+				offset += bytes.limit() - heldBack;
+				blockSize = bufferSize;
+			}
+			if (offset != start)
+				tail = readTail(channel);
+		}
+		return records;
+	}
+
+	/**
+	 * Keeps polling the file until the thread is interrupted. The follower wakes up when the directory
+	 * of the file reports a change, or after the given interval if it does not, for example on file
+	 * systems that do not report changes.
+	 *
+	 * @param interval
+	 * @param unit
+	 * @throws IOException
+	 * @throws InterruptedException when the thread is interrupted, which is how following stops.
+	 */
+	public void follow(long interval, TimeUnit unit) throws IOException, InterruptedException {
+		Path directory = file.toAbsolutePath().getParent();
+		try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			while (true) {
+				poll();
+				WatchKey key = watcher.poll(interval, unit);
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * @return whether the bytes before the offset are still the ones that were there when it was reached.
+	 * After {@link #startAt(long)} they are not known, so the offset must at least follow a line terminator.
+	 */
+	private boolean resumable(FileChannel channel) throws IOException {
+		byte[] bytes = readTail(channel);
+		if (tail != null)
+			return Arrays.equals(tail, bytes);
+		for (String terminator : new String[] {"\n", "\r"}) {
+			byte[] encoded = terminator.getBytes(charset);
+			if (bytes.length >= encoded.length
+					&& Arrays.equals(encoded, Arrays.copyOfRange(bytes, bytes.length - encoded.length, bytes.length)))
+				return true;
+		}
+		return false;
+	}
+
+	private byte[] readTail(FileChannel channel) throws IOException {
+		long position = Math.max(0, offset - TAIL_SIZE);
+		ByteBuffer bytes = ByteBuffer.allocate((int) (offset - position));
+		while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) > 0);
+		return Arrays.copyOf(bytes.array(), bytes.position());
+	}
+
+	private void parse(char[] chars, int end) throws IOException {
+		DsvParser<T> parser = new DsvParser<T>(new CharArrayReader(chars, 0, end), recordParser)
+				.useDelimiter(delimeter)
+				.useQuoteCharacter(quote);
+		parser.setFieldCallback(fieldCallback);
+		parser.setRecordCallback(new DsvRecordCallback<T>() {
+			public boolean processingRecord(T t) {
+				recordCallback.processingRecord(t);
+				// Nothing is kept, every record has already been passed on.
+				return false;
+			}
+		});
+		parser.readAll();
+	}
+}
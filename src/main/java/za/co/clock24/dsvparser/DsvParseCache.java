@@ -0,0 +1,456 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ *
+ * Keeps the parsed fields of a file in a binary cache file, so the next time the same file is read it is
+ * loaded from the cache instead of parsed again. This pays off for large files that are read on every
+ * start-up and seldom change, such as lookup tables.
+ * <p>
+ * A cache entry belongs to the path, size, modification time and a checksum of the contents of the file,
+ * as well as the delimiter, quote character and charset it was parsed with. If any of those differ, the
+ * entry is stale; it is deleted and the file is parsed and cached again. The cache file is memory-mapped
+ * while its fields are decoded, so loading it costs little more than decoding them. The file itself is
+ * only read, never mapped, so it can be replaced while the cache is in use.
+ * <p>
+ * Cache files are written beside the files they belong to, unless you give a cache directory. Stale
+ * entries are cleaned up when a file has to be parsed: those beside the file, or the whole cache directory
+ * the first time a cache instance misses. Callbacks are not supported, because a cached file is not parsed.
+ *
+ * @author Johan Hoogenboezem
+ *
+ */
+public class DsvParseCache {
+	private static final int MAGIC = 0x44535643;
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".dsvcache";
+	private static final int BUFFER_SIZE = 65536;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+	private final Path cacheDirectory;
+	private char delimeter = ',';
+	private char quote = '"';
+	private Charset charset = StandardCharsets.UTF_8;
+	private boolean evicted;
+
+	/**
+	 * Creates a cache that keeps its files beside the files they belong to.
+	 */
+	public DsvParseCache() {
+		this(null);
+	}
+
+	/**
+	 * Creates a cache that keeps its files in the given directory.
+	 *
+	 * @param cacheDirectory
+	 */
+	public DsvParseCache(Path cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Call this method to specify a delimiter different from a comma. Returns
+	 * the cache instance so you can do method chaining.
+	 *
+	 * @param delimeter
+	 * @return
+	 */
+	public DsvParseCache useDelimiter(char delimeter) {
+		this.delimeter = delimeter;
+		return this;
+	}
+
+	/**
+	 * Call this method to specify a different character for quoting strings with.
+	 * Returns the cache instance so you can do method chaining.
+	 *
+	 * @param quote
+	 * @return
+	 */
+	public DsvParseCache useQuoteCharacter(char quote) {
+		this.quote = quote;
+		return this;
+	}
+
+	/**
+	 * Call this method if the files are not UTF-8. Returns the cache instance so you can do method chaining.
+	 *
+	 * @param charset
+	 * @return
+	 */
+	public DsvParseCache useCharset(Charset charset) {
+		this.charset = charset;
+		return this;
+	}
+
+	/**
+	 * Reads the fields of every record in the file, from the cache if it has an up to date entry and by
+	 * parsing the file otherwise.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<String[]> readAll(Path file) throws IOException {
+		return readAll(file, new DsvParser.DefaultRecordParser());
+	}
+
+	/**
+	 * Reads every record in the file, from the cache if it has an up to date entry and by parsing the file
+	 * otherwise. The record parser is applied to the fields either way. If the cache entry cannot be
+	 * written, for example because the disk is full, the records are returned all the same.
+	 *
+	 * @param file
+	 * @param recordParser
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> List<T> readAll(Path file, DsvRecordParser<T> recordParser) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		Entry entry = new Entry(key(file), attributes.size(), attributes.lastModifiedTime().toMillis(), hash(file));
+		Path cacheFile = cacheFile(file, entry.key);
+		List<T> records = load(cacheFile, entry, recordParser);
+		if (records != null)
+			return records;
+		evictOnMiss(file);
+		List<String[]> fields;
+		try (Reader reader = Files.newBufferedReader(file, charset)) {
+			fields = DsvParser.createWithDefaultParser(reader)
+					.useDelimiter(delimeter)
+					.useQuoteCharacter(quote)
+					.readAll();
+		}
+		try {
+			store(cacheFile, entry, fields);
+		} catch (IOException e) {
+			// The file was parsed, so not being able to cache it only costs the next read.
+		}
+		records = new ArrayList<T>(fields.size());
+		for (String[] record : fields)
+			records.add(recordParser.parseRecord(record));
+		return records;
+	}
+
+	/**
+	 * Deletes the entries in the cache directory whose files have been changed, moved or deleted, as well
+	 * as entries that cannot be read and temporary files left behind by writes that did not finish. This
+	 * happens by itself the first time the cache misses, so you only need to call it to clean up sooner.
+	 * Entries kept beside their files are checked when one of those files is parsed.
+	 *
+	 * @return the number of files deleted.
+	 * @throws IOException
+	 */
+	public int evictStale() throws IOException {
+		if (cacheDirectory == null)
+			throw new IllegalStateException("There is no cache directory to evict entries from");
+		return evict(cacheDirectory, "");
+	}
+
+	private void evictOnMiss(Path file) {
+		try {
+			if (cacheDirectory == null)
+				evict(file.toAbsolutePath().getParent(), file.getFileName() + ".");
+			else if (!evicted) {
+				evicted = true;
+				evict(cacheDirectory, "");
+			}
+		} catch (IOException e) {
+			// Only housekeeping, the file is parsed either way.
+		}
+	}
+
+	/**
+	 * Deletes the stale entries in the directory whose names start with the prefix. A temporary file is
+	 * only deleted once it is old enough that nobody can still be writing it.
+	 */
+	private static int evict(Path directory, final String prefix) throws IOException {
+		DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
+			public boolean accept(Path entry) {
+				String name = entry.getFileName().toString();
+				return name.startsWith(prefix) && (name.endsWith(SUFFIX) || (name.contains(SUFFIX) && name.endsWith(TEMP_SUFFIX)));
+			}
+		};
+		long writing = System.currentTimeMillis() - TEMP_FILE_AGE;
+		int evicted = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, filter)) {
+			for (Path cacheFile : entries) {
+				boolean stale = cacheFile.getFileName().toString().endsWith(TEMP_SUFFIX)
+						? Files.getLastModifiedTime(cacheFile).toMillis() < writing
+						: isStale(cacheFile);
+				if (stale && Files.deleteIfExists(cacheFile))
+					evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	private static boolean isStale(Path cacheFile) {
+		// Only the header is read, so the file is not mapped and can be deleted right away.
+		try (Input input = open(cacheFile, false)) {
+			Entry cached = input.readEntry();
+			if (cached == null)
+				return true;
+			BasicFileAttributes attributes = Files.readAttributes(Paths.get(cached.key[0]), BasicFileAttributes.class);
+			return attributes.size() != cached.size || attributes.lastModifiedTime().toMillis() != cached.modified;
+		} catch (IOException | RuntimeException e) {
+			return true;
+		}
+	}
+
+	private String[] key(Path file) {
+		return new String[] {file.toAbsolutePath().normalize().toString(), charset.name(),
+				String.valueOf(delimeter), String.valueOf(quote)};
+	}
+
+	private Path cacheFile(Path file, String[] key) {
+		StringBuilder name = new StringBuilder(file.getFileName().toString()).append('.');
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String part : key) {
+				digest.update(part.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			byte[] bytes = digest.digest();
+			for (int i = 0; i < 8; i++)
+				name.append(String.format("%02x", bytes[i]));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		name.append(SUFFIX);
+		Path directory = cacheDirectory != null ? cacheDirectory : file.toAbsolutePath().getParent();
+		return directory.resolve(name.toString());
+	}
+
+	/**
+	 * Reads the file through a buffer rather than mapping it, because a mapped file cannot be replaced or
+	 * deleted on some platforms until the mapping is garbage collected.
+	 */
+	private static long hash(Path file) throws IOException {
+		CRC32C crc = new CRC32C();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	private <T> List<T> load(Path cacheFile, Entry entry, DsvRecordParser<T> recordParser) {
+		List<String[]> fields = null;
+		try (Input input = open(cacheFile, true)) {
+			Entry cached = input.readEntry();
+			if (entry.equals(cached)) {
+				int count = input.readInt();
+				fields = new ArrayList<String[]>(Math.max(0, Math.min(count, BUFFER_SIZE)));
+				String[] record;
+				while ((record = input.readRecord()) != null)
+					fields.add(record);
+				if (fields.size() != count)
+					fields = null;
+			}
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			// A damaged entry is as good as a stale one, however it fails to decode.
+			fields = null;
+		}
+		if (fields == null) {
+			discard(cacheFile);
+			return null;
+		}
+		// Outside the try, so an exception from the record parser is not mistaken for a damaged entry.
+		List<T> records = new ArrayList<T>(fields.size());
+		for (String[] record : fields)
+			records.add(recordParser.parseRecord(record));
+		return records;
+	}
+
+	/**
+	 * Deletes a cache file if it can. One that cannot be deleted is replaced or deleted the next time.
+	 */
+	private static void discard(Path cacheFile) {
+		try {
+			Files.deleteIfExists(cacheFile);
+		} catch (IOException e) {
+			// Reading the file itself does not depend on it.
+		}
+	}
+
+	private static void store(Path cacheFile, Entry entry, List<String[]> records) throws IOException {
+		Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+		Path temp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				DsvRecordCodec.write(out, entry.key);
+				out.writeLong(entry.size);
+				out.writeLong(entry.modified);
+				out.writeLong(entry.hash);
+				out.writeInt(records.size());
+				for (String[] record : records)
+					DsvRecordCodec.write(out, record);
+				DsvRecordCodec.writeEnd(out);
+			}
+			try {
+				Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Maps the cache file into memory if asked to, unless it is too large for a single mapping, and reads
+	 * it as a stream otherwise. Closing a mapped input drops its buffer, so the mapping is only held while
+	 * the entry is decoded and can be released before the file is deleted or replaced.
+	 */
+	private static Input open(Path cacheFile, boolean map) throws IOException {
+		try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+			if (map && channel.size() <= Integer.MAX_VALUE) {
+				return new MappedInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile), BUFFER_SIZE));
+		return new Input() {
+			public int readInt() throws IOException {
+				return in.readInt();
+			}
+
+			public long readLong() throws IOException {
+				return in.readLong();
+			}
+
+			public String[] readRecord() throws IOException {
+				return DsvRecordCodec.read(in);
+			}
+
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	private interface Input extends AutoCloseable {
+		int readInt() throws IOException;
+
+		long readLong() throws IOException;
+
+		String[] readRecord() throws IOException;
+
+		void close() throws IOException;
+
+		/**
+		 * @return the entry in the header, or null if this is not a cache file this version can read.
+		 */
+		default Entry readEntry() throws IOException {
+			if (readInt() != MAGIC || readInt() != VERSION)
+				return null;
+			String[] key = readRecord();
+			return new Entry(key, readLong(), readLong(), readLong());
+		}
+	}
+
+	/**
+	 * A named class rather than an anonymous one, which would keep the buffer in a captured variable.
+	 */
+	private static final class MappedInput implements Input {
+		private ByteBuffer buffer;
+
+		MappedInput(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int readInt() {
+			return buffer.getInt();
+		}
+
+		public long readLong() {
+			return buffer.getLong();
+		}
+
+		public String[] readRecord() {
+			return DsvRecordCodec.read(buffer);
+		}
+
+		public void close() {
+			buffer = null;
+		}
+	}
+
+	private static final class Entry {
+		final String[] key;
+		final long size;
+		final long modified;
+		final long hash;
+
+		Entry(String[] key, long size, long modified, long hash) {
+			this.key = key;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry))
+				return false;
+			Entry other = (Entry) o;
+			return Arrays.equals(key, other.key) && size == other.size && modified == other.modified
+					&& hash == other.hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(key) ^ Long.hashCode(hash);
+		}
+	}
+}
@@ -37,6 +37,7 @@ public class DsvParser<T> {
 	private static final int EOF = -1;
 	private static final char CARRIAGE_RETURN = '\r';
 	private static final char NEW_LINE = '\n';
+	private static final int SCAN_BUFFER_SIZE = 8192;
 
 	private final Reader reader;
 	private final List<T> lines = new ArrayList<T>();
@@ -48,6 +49,11 @@ public class DsvParser<T> {
 	private final DsvRecordParser<T> dsvRecordParser;
 	private DsvFieldCallback fieldCallback;
 	private DsvRecordCallback<T> recordCallback;
+	private long skip;
+	private long limit = Long.MAX_VALUE;
+	private long recordCount;
+	private boolean readingHeader;
+	private String[] header;
 	private final CarriageReturnState carriageReturnState = new CarriageReturnState();
 	private final DelimiterState delimiterState = new DelimiterState();
 	private final EmbeddedStringState embeddedStringState = new EmbeddedStringState();
@@ -347,21 +353,99 @@ public class DsvParser<T> {
 	 * @throws IOException
 	 */
 	public List<T> readAll() throws IOException {
+		skipRecords();
 		State s = new StartState();
-		while (!(s instanceof EndState)) {
+		while (!(s instanceof EndState) && recordCount < limit) {
 			s = s.process(this);
 		}
 		return lines;
 	}
+
+	/**
+	 * Reads the next record as a header and returns its fields as is. The header does not pass through the
+	 * record parser or the callbacks and does not count towards {@link #skip(long)} or {@link #limit(long)}.
+	 * Call this before {@link #readAll()}, for example to bind a {@link DsvBinder} to the column names.
+	 *
+	 * @return the header fields, or null if there is no more input.
+	 * @throws IOException
+	 */
+	public String[] readHeader() throws IOException {
+		header = null;
+		readingHeader = true;
+		try {
+			State s = new StartState();
+			while (!(s instanceof EndState) && readingHeader) {
+				s = s.process(this);
+			}
+		} finally {
+			readingHeader = false;
+		}
+		return header;
+	}
+
+	/**
+	 * Counts the records without parsing them into fields, so neither the record parser nor the callbacks
+	 * are invoked. Records passed over by {@link #skip(long)} are not counted and the count stops at
+	 * {@link #limit(long)}. When the limit is reached, the reader is left at the start of the next record,
+	 * so a later call to {@link #readAll()} carries on from there.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public long countRecords() throws IOException {
+		skipRecords();
+		if (recordCount >= limit)
+			return 0;
+		long records = scanRecords(limit - recordCount);
+		recordCount += records;
+		return records;
+	}
+
+	private void skipRecords() throws IOException {
+		if (skip == 0)
+			return;
+		scanRecords(skip);
+		skip = 0;
+	}
+
+	/**
+	 * Passes over up to maxRecords records without parsing them. If it stops before the end of the input,
+	 * the reader is left at the start of the next record, so parsing or counting can carry on from there.
+	 */
+	private long scanRecords(long maxRecords) throws IOException {
+		DsvRecordScanner scanner = new DsvRecordScanner(delimeter, quote);
+		char[] buffer = new char[SCAN_BUFFER_SIZE];
+		while (true) {
+			reader.mark(SCAN_BUFFER_SIZE);
+			int read = reader.read(buffer);
+			if (read == EOF) {
+				scanner.endOfInput();
+				break;
+			}
+			int end = scanner.scan(buffer, 0, read, maxRecords);
+			if (scanner.getRecords() >= maxRecords) {
+				reader.reset();
+				reader.skip(end);
+				break;
+			}
+		}
+		return scanner.getRecords();
+	}
 	
 	private void addField() {
 		String field = this.fieldWriter.toString();
-		if (this.fieldCallback != null)
+		if (this.fieldCallback != null && !this.readingHeader)
 			this.fieldCallback.processingField(field);
 		line.add(field);
 	}
 	
 	private void addLine() {
+		if (readingHeader) {
+			header = line.toArray(new String[0]);
+			readingHeader = false;
+			return;
+		}
+		recordCount++;
 		T record = dsvRecordParser.parseRecord(line.toArray(new String[0]));
 		boolean filter = false;
 		if (this.recordCallback != null) {
@@ -394,4 +478,34 @@ public class DsvParser<T> {
 		this.quote = quote;
 		return this;
 	}
+
+	/**
+	 * Call this method to pass over the first n records before parsing or counting starts. The skipped
+	 * records are only scanned for their boundaries, not parsed, so the record parser and callbacks never
+	 * see them. Returns the parser instance so you can do method chaining.
+	 *
+	 * @param n
+	 * @return
+	 */
+	public DsvParser<T> skip(long n) {
+		if (n < 0)
+			throw new IllegalArgumentException("Cannot skip a negative number of records: " + n);
+		this.skip = n;
+		return this;
+	}
+
+	/**
+	 * Call this method to stop reading once n more records have been parsed or counted. Records removed by a
+	 * record callback still count towards the limit. Returns the parser instance so you can do method chaining.
+	 *
+	 * @param n
+	 * @return
+	 */
+	public DsvParser<T> limit(long n) {
+		if (n < 0)
+			throw new IllegalArgumentException("Cannot limit to a negative number of records: " + n);
+		this.limit = n;
+		this.recordCount = 0;
+		return this;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Writes parsed records in a compact binary form and reads them back. A record is its number of fields
+ * followed by every field as a length in bytes and the UTF-8 bytes, and a field count of -1 marks the end.
+ *
+ * @author Johan Hoogenboezem
+ *
+ */
+final class DsvRecordCodec {
+	static final int END = -1;
+
+	private DsvRecordCodec() {
+	}
+
+	static void write(DataOutput out, String[] fields) throws IOException {
+		out.writeInt(fields.length);
+		for (String field : fields) {
+			byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static void writeEnd(DataOutput out) throws IOException {
+		out.writeInt(END);
+	}
+
+	/**
+	 * @param in
+	 * @return the next record, or null at the end marker.
+	 * @throws IOException also when a count or length is negative, which means the input is damaged.
+	 */
+	static String[] read(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count == END)
+			return null;
+		if (count < 0)
+			throw new IOException("Damaged record, field count " + count);
+		String[] fields = new String[count];
+		byte[] bytes = new byte[0];
+		for (int i = 0; i < count; i++) {
+			int length = in.readInt();
+			if (length < 0)
+				throw new IOException("Damaged record, field length " + length);
+			if (bytes.length < length)
+				bytes = new byte[length];
+			in.readFully(bytes, 0, length);
+			fields[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+		return fields;
+	}
+
+	/**
+	 * Reads a record from a buffer, typically a memory-mapped file, without copying the whole buffer.
+	 * Counts and lengths are checked against what is left in the buffer before anything is allocated.
+	 *
+	 * @param in
+	 * @return the next record, or null at the end marker.
+	 * @throws BufferUnderflowException when the record does not fit in what is left of the buffer.
+	 */
+	static String[] read(ByteBuffer in) {
+		int count = in.getInt();
+		if (count == END)
+			return null;
+		// Every field takes at least the four bytes of its length.
+		if (count < 0 || count > in.remaining() / 4)
+			throw new BufferUnderflowException();
+		String[] fields = new String[count];
+		byte[] bytes = new byte[0];
+		for (int i = 0; i < count; i++) {
+			int length = in.getInt();
+			if (length < 0 || length > in.remaining())
+				throw new BufferUnderflowException();
+			if (bytes.length < length)
+				bytes = new byte[length];
+			in.get(bytes, 0, length);
+			fields[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+		return fields;
+	}
+}
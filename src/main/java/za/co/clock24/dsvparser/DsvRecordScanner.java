@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+/**
+ *
+ * A minimal scanner that only finds record boundaries. It follows the same quoting rules as the states
+ * in {@link DsvParser}, but it never builds fields, so counting or skipping records costs little more
+ * than reading the characters. The scanner works on blocks of characters and keeps its state between
+ * calls, so a record may span any number of blocks.
+ *
+ * @author Johan Hoogenboezem
+ *
+ */
+final class DsvRecordScanner {
+	private static final char CARRIAGE_RETURN = '\r';
+	private static final char NEW_LINE = '\n';
+
+	private static final int LINE_START = 0;
+	private static final int FIELD_START = 1;
+	private static final int FIELD = 2;
+	private static final int FIELD_EMBEDDED = 3;
+	private static final int STRING_FIELD = 4;
+	private static final int STRING_FIELD_QUOTE = 5;
+	private static final int STRING_FIELD_EMBEDDED = 6;
+	private static final int CARRIAGE_RETURN_SEEN = 7;
+
+	private final char delimiter;
+	private final char quote;
+	private int state = LINE_START;
+	private long records;
+	private int recordEnd = -1;
+
+	DsvRecordScanner(char delimiter, char quote) {
+		this.delimiter = delimiter;
+		this.quote = quote;
+	}
+
+	/**
+	 * Scans the characters from offset up to (but excluding) end and stops as soon as the total number of
+	 * records seen reaches maxRecords.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param end
+	 * @param maxRecords
+	 * @return the index just past the terminator of the record that reached maxRecords, or end if the
+	 * limit was not reached in this block.
+	 */
+	int scan(char[] buffer, int offset, int end, long maxRecords) {
+		recordEnd = -1;
+		if (records >= maxRecords)
+			return offset;
+		int i = offset;
+		while (i < end) {
+			char c = buffer[i];
+			switch (state) {
+			case LINE_START:
+			case FIELD_START:
+				if (c == quote)
+					state = STRING_FIELD;
+				else if (c == delimiter)
+					state = FIELD_START;
+				else if (c == CARRIAGE_RETURN)
+					state = CARRIAGE_RETURN_SEEN;
+				else if (c == NEW_LINE) {
+					if (endRecord(i + 1, maxRecords))
+						return i + 1;
+				}
+				else
+					state = FIELD;
+				break;
+			case FIELD:
+				if (c == quote)
+					state = FIELD_EMBEDDED;
+				else if (c == delimiter)
+					state = FIELD_START;
+				else if (c == CARRIAGE_RETURN)
+					state = CARRIAGE_RETURN_SEEN;
+				else if (c == NEW_LINE) {
+					if (endRecord(i + 1, maxRecords))
+						return i + 1;
+				}
+				break;
+			case FIELD_EMBEDDED:
+				if (c == quote)
+					state = FIELD;
+				break;
+			case STRING_FIELD:
+				if (c == quote)
+					state = STRING_FIELD_QUOTE;
+				break;
+			case STRING_FIELD_QUOTE:
+				if (c == delimiter)
+					state = FIELD_START;
+				else if (c == CARRIAGE_RETURN)
+					state = CARRIAGE_RETURN_SEEN;
+				else if (c == NEW_LINE) {
+					if (endRecord(i + 1, maxRecords))
+						return i + 1;
+				}
+				else if (c == quote)
+					state = STRING_FIELD;
+				else
+					state = STRING_FIELD_EMBEDDED;
+				break;
+			case STRING_FIELD_EMBEDDED:
+				if (c == quote)
+					state = STRING_FIELD;
+				break;
+			case CARRIAGE_RETURN_SEEN:
+				if (c == NEW_LINE) {
+					if (endRecord(i + 1, maxRecords))
+						return i + 1;
+				}
+				else {
+					// The record ended with the carriage return, so this character starts the next one.
+					if (endRecord(i, maxRecords))
+						return i;
+					continue;
+				}
+				break;
+			}
+			i++;
+		}
+		return end;
+	}
+
+	/**
+	 * Call this once the input is exhausted to account for a last record that was not terminated.
+	 *
+	 * @return true if a record was still in progress and has now been counted.
+	 */
+	boolean endOfInput() {
+		if (state == LINE_START)
+			return false;
+		state = LINE_START;
+		records++;
+		return true;
+	}
+
+	/**
+	 * @return the number of complete records seen so far.
+	 */
+	long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the index just past the last record that ended during the previous call to scan, or -1 if
+	 * no record ended in that block.
+	 */
+	int getRecordEnd() {
+		return recordEnd;
+	}
+
+	private boolean endRecord(int end, long maxRecords) {
+		state = LINE_START;
+		recordEnd = end;
+		return ++records >= maxRecords;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+
+/**
+ *
+ * Compares a {@link DsvBinder} with a hand-written record parser and with one that sets the fields through
+ * reflection. It is not part of the unit tests; run its main method from the test classpath. Not a proper
+ * benchmark harness, but enough to see how the three compare once the JIT has warmed up.
+ *
+ * @author Johan Hoogenboezem
+ *
+ */
+public class DsvBinderBenchmark {
+	static Object sink;
+
+	public static class Person {
+		public int employeeNumber = -1;
+		public String emailAddress;
+		public String surname;
+		public String firstName;
+	}
+
+	public static class Bean {
+		private int employeeNumber = -1;
+		private String emailAddress;
+		private String surname;
+		private String firstName;
+
+		public void setEmployeeNumber(int employeeNumber) {
+			this.employeeNumber = employeeNumber;
+		}
+
+		public void setEmailAddress(String emailAddress) {
+			this.emailAddress = emailAddress;
+		}
+
+		public void setSurname(String surname) {
+			this.surname = surname;
+		}
+
+		public void setFirstName(String firstName) {
+			this.firstName = firstName;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] header = {"employeeNumber", "emailAddress", "surname", "firstName"};
+		String[][] records = new String[100000][];
+		for (int i = 0; i < records.length; i++)
+			records[i] = new String[] {String.valueOf(i), "email" + i + "@example.org", "Citizen", "Joe"};
+		DsvRecordParser<Person> handWritten = new DsvRecordParser<Person>() {
+			public Person parseRecord(String[] fields) {
+				Person person = new Person();
+				person.employeeNumber = Integer.parseInt(fields[0]);
+				person.emailAddress = fields[1];
+				person.surname = fields[2];
+				person.firstName = fields[3];
+				return person;
+			}
+		};
+		DsvRecordParser<Person> boundFields = DsvBinder.create(Person.class, MethodHandles.lookup()).bindHeader(header);
+		DsvRecordParser<Bean> boundSetters = DsvBinder.create(Bean.class, MethodHandles.lookup()).bindHeader(header);
+		final Field[] fields = new Field[header.length];
+		for (int i = 0; i < header.length; i++)
+			fields[i] = Person.class.getField(header[i]);
+		DsvRecordParser<Person> reflective = new DsvRecordParser<Person>() {
+			public Person parseRecord(String[] values) {
+				try {
+					Person person = Person.class.getDeclaredConstructor().newInstance();
+					for (int i = 0; i < fields.length; i++) {
+						if (fields[i].getType() == int.class)
+							fields[i].setInt(person, Integer.parseInt(values[i]));
+						else
+							fields[i].set(person, values[i]);
+					}
+					return person;
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		for (int round = 0; round < rounds; round++) {
+			System.out.println("hand-written " + time(handWritten, records)
+					+ "ns, bound fields " + time(boundFields, records)
+					+ "ns, bound setters " + time(boundSetters, records)
+					+ "ns, reflective " + time(reflective, records) + "ns per record");
+		}
+	}
+
+	private static long time(DsvRecordParser<?> parser, String[][] records) {
+		long start = System.nanoTime();
+		for (String[] record : records)
+			sink = parser.parseRecord(record);
+		return (System.nanoTime() - start) / records.length;
+	}
+
+}
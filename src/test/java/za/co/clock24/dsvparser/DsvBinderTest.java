@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DsvBinderTest {
+	static class Person {
+		public int employeeNumber = -1;
+		public String emailAddress;
+		public String surname;
+		public String firstName;
+	}
+
+	enum Status {
+		ACTIVE, RETIRED
+	}
+
+	static class Account {
+		private long id;
+		private BigDecimal balance;
+		private Integer branch;
+		private boolean overdrawn;
+		private Status status;
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public void setBalance(BigDecimal balance) {
+			this.balance = balance;
+		}
+
+		public void setBranch(Integer branch) {
+			this.branch = branch;
+		}
+
+		@DsvColumn("in the red")
+		private void setOverdrawn(boolean overdrawn) {
+			this.overdrawn = overdrawn;
+		}
+
+		public void setStatus(Status status) {
+			this.status = status;
+		}
+	}
+
+	static class Point {
+		@DsvColumn(index = 1)
+		double x;
+		@DsvColumn(index = 0)
+		double y;
+	}
+
+	static final class Rate {
+		final String currency;
+		final double rate;
+
+		Rate(@DsvColumn("currency") String currency, @DsvColumn("rate") double rate) {
+			this.currency = currency;
+			this.rate = rate;
+		}
+	}
+
+	@Test
+	public void testBindFields() throws IOException {
+		StringReader reader = new StringReader("surname,firstName,EmailAddress,employeeNumber\n" +
+				"\"Citizen\",\"Joe\",\"email@example.org\",1\n" +
+				"Bloggs,Fred,,2");
+		DsvBinder<Person> binder = DsvBinder.create(Person.class, MethodHandles.lookup());
+		DsvParser<Person> parser = new DsvParser<Person>(reader, binder);
+		binder.bindHeader(parser.readHeader());
+		List<Person> list = parser.readAll();
+		assertNotNull(list);
+		assertTrue(list.size() == 2);
+		Person person = list.get(0);
+		assertEquals("email@example.org", person.emailAddress);
+		assertEquals("Citizen", person.surname);
+		assertEquals("Joe", person.firstName);
+		assertTrue(person.employeeNumber == 1);
+		person = list.get(1);
+		assertEquals("", person.emailAddress);
+		assertEquals("Bloggs", person.surname);
+		assertTrue(person.employeeNumber == 2);
+	}
+
+	@Test
+	public void testBindSetters() throws IOException {
+		StringReader reader = new StringReader("id;balance;branch;in the red;status;ignored\n" +
+				"7;-10.50;;true;ACTIVE;x");
+		DsvBinder<Account> binder = DsvBinder.create(Account.class, MethodHandles.lookup());
+		DsvParser<Account> parser = new DsvParser<Account>(reader, binder).useDelimiter(';');
+		binder.bindHeader(parser.readHeader());
+		List<Account> list = parser.readAll();
+		assertTrue(list.size() == 1);
+		Account account = list.get(0);
+		assertTrue(account.id == 7);
+		assertEquals(new BigDecimal("-10.50"), account.balance);
+		assertNull(account.branch);
+		assertTrue(account.overdrawn);
+		assertEquals(Status.ACTIVE, account.status);
+	}
+
+	@Test
+	public void testBindIndexWithoutHeader() throws IOException {
+		StringReader reader = new StringReader("1.5,2.5\n3,");
+		DsvParser<Point> parser = new DsvParser<Point>(reader, DsvBinder.create(Point.class, MethodHandles.lookup()));
+		List<Point> list = parser.readAll();
+		assertTrue(list.size() == 2);
+		assertEquals(2.5, list.get(0).x, 0.0);
+		assertEquals(1.5, list.get(0).y, 0.0);
+		assertEquals(0.0, list.get(1).x, 0.0);
+		assertEquals(3.0, list.get(1).y, 0.0);
+	}
+
+	@Test
+	public void testBindConstructor() throws IOException {
+		StringReader reader = new StringReader("rate,currency\n18.25,ZAR\n,USD");
+		DsvBinder<Rate> binder = DsvBinder.create(Rate.class, MethodHandles.lookup());
+		DsvParser<Rate> parser = new DsvParser<Rate>(reader, binder);
+		binder.bindHeader(parser.readHeader());
+		List<Rate> list = parser.readAll();
+		assertTrue(list.size() == 2);
+		assertEquals("ZAR", list.get(0).currency);
+		assertEquals(18.25, list.get(0).rate, 0.0);
+		assertEquals("USD", list.get(1).currency);
+		assertEquals(0.0, list.get(1).rate, 0.0);
+	}
+
+	@Test
+	public void testReadHeaderSkipsCallbacks() throws IOException {
+		StringReader reader = new StringReader("a,b\n1,2\n3,4");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		parser.setRecordCallback(new DsvRecordCallback<String[]>() {
+			public boolean processingRecord(String[] t) {
+				assertFalse(t[0].equals("a"));
+				return true;
+			}
+		});
+		String[] header = parser.readHeader();
+		assertEquals("a", header[0]);
+		assertEquals("b", header[1]);
+		List<String[]> list = parser.limit(1).readAll();
+		assertTrue(list.size() == 1);
+		assertEquals("1", list.get(0)[0]);
+	}
+
+	@Test
+	public void testReadHeaderEmpty() throws IOException {
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader(""));
+		assertNull(parser.readHeader());
+	}
+
+	static class Event {
+		public String name;
+		public LocalDate date;
+		private Runnable listener;
+
+		public void setListener(Runnable listener) {
+			this.listener = listener;
+		}
+	}
+
+	static class AnnotatedEvent {
+		@DsvColumn("when")
+		public LocalDate date;
+	}
+
+	static class Measurement {
+		int age;
+		String setting;
+
+		@DsvColumn(index = 0)
+		void age(int age) {
+			this.age = age;
+		}
+
+		@DsvColumn(index = 1)
+		void settle(String setting) {
+			this.setting = setting;
+		}
+	}
+
+	@Test
+	public void testBindAnnotatedMethods() throws IOException {
+		StringReader reader = new StringReader("42,on");
+		List<Measurement> list = new DsvParser<Measurement>(reader,
+				DsvBinder.create(Measurement.class, MethodHandles.lookup())).readAll();
+		assertTrue(list.size() == 1);
+		assertTrue(list.get(0).age == 42);
+		assertEquals("on", list.get(0).setting);
+	}
+
+	@Test
+	public void testUnboundMembersOfAnyType() throws IOException {
+		StringReader reader = new StringReader("name,other\nlaunch,x");
+		DsvBinder<Event> binder = DsvBinder.create(Event.class, MethodHandles.lookup());
+		DsvParser<Event> parser = new DsvParser<Event>(reader, binder);
+		binder.bindHeader(parser.readHeader());
+		List<Event> list = parser.readAll();
+		assertTrue(list.size() == 1);
+		assertEquals("launch", list.get(0).name);
+		assertNull(list.get(0).date);
+		assertNull(list.get(0).listener);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundMemberOfUnsupportedType() {
+		DsvBinder.create(Event.class, MethodHandles.lookup()).bindHeader(new String[] {"name", "date"});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAnnotatedMemberOfUnsupportedType() {
+		DsvBinder.create(AnnotatedEvent.class, MethodHandles.lookup());
+	}
+
+}
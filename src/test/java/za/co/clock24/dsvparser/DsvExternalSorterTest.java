@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class DsvExternalSorterTest {
+
+	private static String records(int count) {
+		Random random = new Random(1);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			builder.append(random.nextInt(100)).append(",\"line ").append(i).append("\r\nof text\",").append(i).append('\n');
+		return builder.toString();
+	}
+
+	private static void assertSorted(List<String[]> list, int count) {
+		assertTrue(list.size() == count);
+		for (int i = 1; i < list.size(); i++) {
+			int order = list.get(i - 1)[0].compareTo(list.get(i)[0]);
+			assertTrue(order <= 0);
+			// Equal keys keep the order they were read in.
+			if (order == 0)
+				assertTrue(Integer.parseInt(list.get(i - 1)[2]) < Integer.parseInt(list.get(i)[2]));
+		}
+		assertEquals("line " + list.get(0)[2] + "\r\nof text", list.get(0)[1]);
+	}
+
+	@Test
+	public void testSortInMemory() throws IOException {
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader("b,1\na,2\nc,3\na,1"));
+		try (Stream<String[]> sorted = new DsvExternalSorter(DsvExternalSorter.byColumns(0)).sort(parser)) {
+			List<String[]> list = sorted.collect(Collectors.toList());
+			assertTrue(list.size() == 4);
+			assertEquals("a", list.get(0)[0]);
+			assertEquals("2", list.get(0)[1]);
+			assertEquals("a", list.get(1)[0]);
+			assertEquals("1", list.get(1)[1]);
+			assertEquals("b", list.get(2)[0]);
+			assertEquals("c", list.get(3)[0]);
+		}
+	}
+
+	@Test
+	public void testSortSpillsRuns() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader(records(1000)));
+			DsvExternalSorter sorter = new DsvExternalSorter(DsvExternalSorter.byColumns(0))
+					.useRunSize(1000)
+					.useTempDirectory(directory);
+			try (Stream<String[]> sorted = sorter.sort(parser)) {
+				try (Stream<Path> runs = Files.list(directory)) {
+					assertTrue(runs.count() > 1);
+				}
+				assertSorted(sorted.collect(Collectors.toList()), 1000);
+			}
+			try (Stream<Path> runs = Files.list(directory)) {
+				assertTrue(runs.count() == 0);
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testSortMergesInPasses() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader(records(1000)));
+			DsvExternalSorter sorter = new DsvExternalSorter(DsvExternalSorter.byColumns(0))
+					.useRunSize(100)
+					.useMaxFanIn(3)
+					.useTempDirectory(directory);
+			try (Stream<String[]> sorted = sorter.sort(parser)) {
+				try (Stream<Path> runs = Files.list(directory)) {
+					long count = runs.count();
+					assertTrue(count > 1 && count <= 3);
+				}
+				assertSorted(sorted.collect(Collectors.toList()), 1000);
+			}
+			try (Stream<Path> runs = Files.list(directory)) {
+				assertTrue(runs.count() == 0);
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxFanInTooSmall() {
+		new DsvExternalSorter(DsvExternalSorter.byColumns(0)).useMaxFanIn(1);
+	}
+
+	@Test
+	public void testSortMissingColumns() throws IOException {
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader("1,b\n2\n3,a"));
+		try (Stream<String[]> sorted = new DsvExternalSorter(DsvExternalSorter.byColumns(1)).sort(parser)) {
+			List<String[]> list = sorted.collect(Collectors.toList());
+			assertEquals("2", list.get(0)[0]);
+			assertEquals("3", list.get(1)[0]);
+			assertEquals("1", list.get(2)[0]);
+		}
+	}
+
+	@Test
+	public void testGroupBy() throws IOException {
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader(records(1000)));
+		DsvExternalSorter sorter = new DsvExternalSorter(DsvExternalSorter.byColumns(0)).useRunSize(1000);
+		try (Stream<Long> counts = DsvExternalSorter.groupBy(sorter.sort(parser), DsvExternalSorter.byColumns(0),
+				Collectors.counting())) {
+			List<Long> list = counts.collect(Collectors.toList());
+			assertTrue(list.size() == 100);
+			long total = 0;
+			for (Long count : list)
+				total += count;
+			assertTrue(total == 1000);
+		}
+	}
+
+	@Test
+	public void testGroupByDeduplicates() throws IOException {
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader("b,1\na,2\nb,3\na,4"));
+		DsvExternalSorter sorter = new DsvExternalSorter(DsvExternalSorter.byColumns(0));
+		try (Stream<String[]> unique = DsvExternalSorter.groupBy(sorter.sort(parser), DsvExternalSorter.byColumns(0),
+				Collectors.reducing(null, (String[] first, String[] next) -> first == null ? next : first))) {
+			List<String[]> list = unique.collect(Collectors.toList());
+			assertTrue(list.size() == 2);
+			assertEquals("2", list.get(0)[1]);
+			assertEquals("1", list.get(1)[1]);
+		}
+	}
+
+}
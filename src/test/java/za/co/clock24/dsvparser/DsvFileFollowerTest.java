@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DsvFileFollowerTest {
+
+	private final List<String[]> records = new ArrayList<String[]>();
+
+	private DsvFileFollower<String[]> follow(Path file) {
+		return new DsvFileFollower<String[]>(file, new DsvParser.DefaultRecordParser(), new DsvRecordCallback<String[]>() {
+			public boolean processingRecord(String[] t) {
+				records.add(t);
+				return true;
+			}
+		});
+	}
+
+	private static void append(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+	@Test
+	public void testFollowAppends() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			DsvFileFollower<String[]> follower = follow(file);
+			assertTrue(follower.poll() == 0);
+			append(file, "1,2\n3,\"multi");
+			assertTrue(follower.poll() == 1);
+			assertEquals(4, follower.getOffset());
+			append(file, "\nline\"\r");
+			// The carriage return may still be followed by a line feed, so the record is held back.
+			assertTrue(follower.poll() == 0);
+			append(file, "\n5,6");
+			assertTrue(follower.poll() == 1);
+			append(file, "\n");
+			assertTrue(follower.poll() == 1);
+			assertTrue(follower.poll() == 0);
+			assertTrue(records.size() == 3);
+			assertEquals("1", records.get(0)[0]);
+			assertEquals("multi\nline", records.get(1)[1]);
+			assertEquals("6", records.get(2)[1]);
+			assertEquals(Files.size(file), follower.getOffset());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testFollowSmallBuffer() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			append(file, "\u00e9t\u00e9,\"a long field that does not fit\"\n\u20ac,2\n");
+			DsvFileFollower<String[]> follower = follow(file).useBufferSize(3);
+			assertTrue(follower.poll() == 2);
+			assertEquals("\u00e9t\u00e9", records.get(0)[0]);
+			assertEquals("\u20ac", records.get(1)[0]);
+			assertEquals(Files.size(file), follower.getOffset());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testFollowTruncation() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			append(file, "1,2\n3,4\n");
+			DsvFileFollower<String[]> follower = follow(file);
+			assertTrue(follower.poll() == 2);
+			Files.write(file, "5,6\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+			assertTrue(follower.poll() == 1);
+			assertEquals("5", records.get(2)[0]);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testFollowTruncationThenGrowth() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			append(file, "1,2\n3,4\n");
+			DsvFileFollower<String[]> follower = follow(file);
+			assertTrue(follower.poll() == 2);
+			// Truncated in place and written past the old offset before the next poll.
+			Files.write(file, "5,6\n7,8\n9,0\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+			assertTrue(follower.poll() == 3);
+			assertEquals("5", records.get(2)[0]);
+			assertEquals("9", records.get(4)[0]);
+			append(file, "1,1\n");
+			assertTrue(follower.poll() == 1);
+			assertEquals("1", records.get(5)[1]);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testStartAtMiddleOfRecord() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			append(file, "1,2\n3,4\n");
+			DsvFileFollower<String[]> follower = follow(file).startAt(6);
+			assertTrue(follower.poll() == 2);
+			assertEquals("1", records.get(0)[0]);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testFollowRotation() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		Path rotated = file.resolveSibling(file.getFileName() + ".1");
+		try {
+			append(file, "1,2\n");
+			DsvFileFollower<String[]> follower = follow(file);
+			assertTrue(follower.poll() == 1);
+			Files.move(file, rotated);
+			assertTrue(follower.poll() == 0);
+			Files.write(file, "3,4\n5,6\n".getBytes(StandardCharsets.UTF_8));
+			assertTrue(follower.poll() == 2);
+			assertEquals("3", records.get(1)[0]);
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(rotated);
+		}
+	}
+
+	@Test
+	public void testStartAt() throws IOException {
+		Path file = Files.createTempFile("dsv", ".csv");
+		try {
+			append(file, "1,2\n3,4\n");
+			DsvFileFollower<String[]> follower = follow(file).startAt(4);
+			assertTrue(follower.poll() == 1);
+			assertEquals("3", records.get(0)[0]);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
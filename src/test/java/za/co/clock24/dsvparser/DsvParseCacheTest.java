@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013 Johan Hoogenboezem
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package za.co.clock24.dsvparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class DsvParseCacheTest {
+
+	private static void write(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<Path> entries(Path directory) throws IOException {
+		List<Path> entries = new ArrayList<Path>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(entries::add);
+		}
+		return entries;
+	}
+
+	private static void delete(Path directory) throws IOException {
+		for (Path file : entries(directory))
+			Files.delete(file);
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testCacheHit() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		Path cacheDirectory = Files.createTempDirectory("dsvcache");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,\"18.25\"\nUSD,\"1\r\n.00\"\n");
+			DsvParseCache cache = new DsvParseCache(cacheDirectory);
+			List<String[]> list = cache.readAll(file);
+			assertTrue(list.size() == 2);
+			List<Path> entries = entries(cacheDirectory);
+			assertTrue(entries.size() == 1);
+			FileTime written = Files.getLastModifiedTime(entries.get(0));
+			list = cache.readAll(file);
+			assertTrue(list.size() == 2);
+			assertEquals("ZAR", list.get(0)[0]);
+			assertEquals("1\r\n.00", list.get(1)[1]);
+			assertEquals(written, Files.getLastModifiedTime(entries.get(0)));
+		} finally {
+			delete(directory);
+			delete(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void testCacheStale() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,18.25\n");
+			DsvParseCache cache = new DsvParseCache();
+			assertEquals("18.25", cache.readAll(file).get(0)[1]);
+			assertTrue(entries(directory).size() == 2);
+			// Same size and modification time, only the contents tell them apart.
+			FileTime modified = Files.getLastModifiedTime(file);
+			write(file, "ZAR,18.26\n");
+			Files.setLastModifiedTime(file, modified);
+			assertEquals("18.26", cache.readAll(file).get(0)[1]);
+			assertEquals("18.26", cache.readAll(file).get(0)[1]);
+			assertTrue(entries(directory).size() == 2);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testCacheSettings() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR;18,25\n");
+			assertTrue(new DsvParseCache().readAll(file).get(0).length == 2);
+			assertTrue(new DsvParseCache().useDelimiter(';').readAll(file).get(0).length == 2);
+			assertEquals("18,25", new DsvParseCache().useDelimiter(';').readAll(file).get(0)[1]);
+			assertEquals("ZAR;18", new DsvParseCache().readAll(file).get(0)[0]);
+			assertTrue(entries(directory).size() == 3);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testCacheDamaged() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		Path cacheDirectory = Files.createTempDirectory("dsvcache");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,18.25\n");
+			DsvParseCache cache = new DsvParseCache(cacheDirectory);
+			cache.readAll(file);
+			Path entry = entries(cacheDirectory).get(0);
+			byte[] bytes = Files.readAllBytes(entry);
+			Files.write(entry, Arrays.copyOf(bytes, bytes.length - 6));
+			assertEquals("ZAR", cache.readAll(file).get(0)[0]);
+			assertTrue(Files.size(entry) == bytes.length);
+		} finally {
+			delete(directory);
+			delete(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void testCacheCorruptCount() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		Path cacheDirectory = Files.createTempDirectory("dsvcache");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,18.25\n");
+			DsvParseCache cache = new DsvParseCache(cacheDirectory);
+			cache.readAll(file);
+			Path entry = entries(cacheDirectory).get(0);
+			byte[] bytes = Files.readAllBytes(entry);
+			// The field count of the only record, just before its two fields and the end marker.
+			int count = bytes.length - 4 - (4 + 3) - (4 + 5) - 4;
+			for (int value : new int[] {-2, Integer.MAX_VALUE}) {
+				byte[] damaged = bytes.clone();
+				ByteBuffer.wrap(damaged).putInt(count, value);
+				Files.write(entry, damaged);
+				assertEquals("18.25", cache.readAll(file).get(0)[1]);
+				assertTrue(Arrays.equals(bytes, Files.readAllBytes(entry)));
+			}
+		} finally {
+			delete(directory);
+			delete(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void testCacheNotWritable() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,18.25\n");
+			// A file where the cache directory should be, so nothing can be written to it.
+			Path cacheDirectory = directory.resolve("cache");
+			write(cacheDirectory, "");
+			assertEquals("ZAR", new DsvParseCache(cacheDirectory).readAll(file).get(0)[0]);
+			assertTrue(entries(directory).size() == 2);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testEvictOnMiss() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		Path cacheDirectory = Files.createTempDirectory("dsvcache");
+		try {
+			Path kept = directory.resolve("kept.csv");
+			Path removed = directory.resolve("removed.csv");
+			write(kept, "1,2\n");
+			write(removed, "3,4\n");
+			new DsvParseCache(cacheDirectory).readAll(removed);
+			Files.delete(removed);
+			new DsvParseCache(cacheDirectory).readAll(kept);
+			assertTrue(entries(cacheDirectory).size() == 1);
+			// Beside the file, only the entries of the file being parsed are checked.
+			DsvParseCache cache = new DsvParseCache();
+			cache.readAll(kept);
+			Path orphan = directory.resolve("kept.csv.0123456789abcdef.dsvcache42.tmp");
+			write(orphan, "");
+			Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+			write(kept, "1,2,3\n");
+			cache.readAll(kept);
+			assertTrue(entries(directory).size() == 2);
+		} finally {
+			delete(directory);
+			delete(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void testCacheRecordParser() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		try {
+			Path file = directory.resolve("rates.csv");
+			write(file, "ZAR,18.25\nUSD,1\n");
+			DsvRecordParser<Double> rate = new DsvRecordParser<Double>() {
+				public Double parseRecord(String[] fields) {
+					return Double.valueOf(fields[1]);
+				}
+			};
+			DsvParseCache cache = new DsvParseCache();
+			assertEquals(18.25, cache.readAll(file, rate).get(0), 0.0);
+			assertEquals(1.0, cache.readAll(file, rate).get(1), 0.0);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testEvictStale() throws IOException {
+		Path directory = Files.createTempDirectory("dsv");
+		Path cacheDirectory = Files.createTempDirectory("dsvcache");
+		try {
+			Path kept = directory.resolve("kept.csv");
+			Path removed = directory.resolve("removed.csv");
+			write(kept, "1,2\n");
+			write(removed, "3,4\n");
+			DsvParseCache cache = new DsvParseCache(cacheDirectory);
+			cache.readAll(kept);
+			cache.readAll(removed);
+			write(cacheDirectory.resolve("garbage.dsvcache"), "not a cache file");
+			Path orphan = cacheDirectory.resolve("removed.csv.0123456789abcdef.dsvcache42.tmp");
+			write(orphan, "");
+			Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - 2 * 60 * 60 * 1000));
+			write(cacheDirectory.resolve("kept.csv.0123456789abcdef.dsvcache43.tmp"), "");
+			Files.delete(removed);
+			assertTrue(cache.evictStale() == 3);
+			assertTrue(entries(cacheDirectory).size() == 2);
+		} finally {
+			delete(directory);
+			delete(cacheDirectory);
+		}
+	}
+
+}
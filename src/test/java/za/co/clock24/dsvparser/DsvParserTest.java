@@ -285,4 +285,79 @@ public class DsvParserTest {
 		assertTrue(list.get(0).length == 4);
 	}
 
+	@Test
+	public void testCountRecords() throws IOException {
+		StringReader reader = new StringReader("1,2,3,\"4\n5\",\"6\r7\"\n" +
+				"1,2,3,\"4\n5\",\"6\r7\"\r"+
+				"1,2,3,\"4\n5\",\"6\r7\"\r\n"+
+				"1,2,3,\"4\n5\",\"6\r7\"");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		assertTrue(parser.countRecords() == 4);
+	}
+
+	@Test
+	public void testCountRecordsEmpty() throws IOException {
+		StringReader reader = new StringReader("");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		assertTrue(parser.countRecords() == 0);
+	}
+
+	@Test
+	public void testCountRecordsSkipsCallbacks() throws IOException {
+		StringReader reader = new StringReader("1,2,3,4\n5,6,7,8\n");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		parser.setFieldCallback(new DsvFieldCallback() {
+			public void processingField(String field) {
+				fieldCallbackCount++;
+			}
+		});
+		assertTrue(parser.countRecords() == 2);
+		assertTrue(fieldCallbackCount == 0);
+	}
+
+	@Test
+	public void testSkipAndLimit() throws IOException {
+		StringReader reader = new StringReader("1,2\r\n\"3\r\n\",4\r\n5,6\r\n7,8\r\n9,10");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		List<String[]> list = parser.skip(1).limit(2).readAll();
+		assertNotNull(list);
+		assertTrue(list.size() == 2);
+		assertEquals("3\r\n", list.get(0)[0]);
+		assertEquals("5", list.get(1)[0]);
+	}
+
+	@Test
+	public void testSkipPastEnd() throws IOException {
+		StringReader reader = new StringReader("1,2\n3,4\n");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		List<String[]> list = parser.skip(5).readAll();
+		assertNotNull(list);
+		assertTrue(list.size() == 0);
+	}
+
+	@Test
+	public void testSkipAcrossScanBuffers() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			builder.append(i).append(",\"some, quoted\r\ntext\"\r\n");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(new StringReader(builder.toString()));
+		List<String[]> list = parser.skip(9000).readAll();
+		assertTrue(list.size() == 1000);
+		assertEquals("9000", list.get(0)[0]);
+		parser = DsvParser.createWithDefaultParser(new StringReader(builder.toString()));
+		assertTrue(parser.skip(100).limit(500).countRecords() == 500);
+	}
+
+	@Test
+	public void testCountRecordsThenReadAll() throws IOException {
+		StringReader reader = new StringReader("1,2\r3,\"4\r\n\"\r\n5,6\n7,8");
+		DsvParser<String[]> parser = DsvParser.createWithDefaultParser(reader);
+		assertTrue(parser.limit(1).countRecords() == 1);
+		assertTrue(parser.limit(1).countRecords() == 1);
+		List<String[]> list = parser.limit(Long.MAX_VALUE).readAll();
+		assertTrue(list.size() == 2);
+		assertEquals("5", list.get(0)[0]);
+		assertEquals("7", list.get(1)[0]);
+	}
+
 }